@@ -14,6 +14,7 @@ import android.widget.ListView;
 import android.widget.Toast;
 
 import com.faizmalkani.floatingactionbutton.FloatingActionButton;
+import com.faizmalkani.floatingactionbutton.FloatingActionButtonTheme;
 
 
 public class MainActivity extends ActionBarActivity {
@@ -69,37 +70,32 @@ public class MainActivity extends ActionBarActivity {
         switch (view.getId()) {
             case R.id.blueButton: {
                 int holoBlue = getResources().getColor(R.color.holo_blue_light);
-                mFab.setColor(holoBlue);
                 getSupportActionBar().setBackgroundDrawable(new ColorDrawable(holoBlue));
-                mFab.setDrawable(getResources().getDrawable(R.drawable.ic_content_new));
+                FloatingActionButtonTheme.of(this).edit().setColor(holoBlue).setDrawableResource(R.drawable.ic_content_new).apply();
                 break;
             }
             case R.id.purpleButton: {
                 int holoPurple = getResources().getColor(R.color.holo_purple);
-                mFab.setColor(holoPurple);
                 getSupportActionBar().setBackgroundDrawable(new ColorDrawable(holoPurple));
-                mFab.setDrawable(getResources().getDrawable(R.drawable.ic_av_play));
+                FloatingActionButtonTheme.of(this).edit().setColor(holoPurple).setDrawableResource(R.drawable.ic_av_play).apply();
                 break;
             }
             case R.id.greenButton: {
                 int holoGreen = getResources().getColor(R.color.holo_green_light);
-                mFab.setColor(holoGreen);
                 getSupportActionBar().setBackgroundDrawable(new ColorDrawable(holoGreen));
-                mFab.setDrawable(getResources().getDrawable(R.drawable.ic_content_discard));
+                FloatingActionButtonTheme.of(this).edit().setColor(holoGreen).setDrawableResource(R.drawable.ic_content_discard).apply();
                 break;
             }
             case R.id.orangeButton: {
                 int holoOrange = getResources().getColor(R.color.holo_orange_light);
-                mFab.setColor(holoOrange);
                 getSupportActionBar().setBackgroundDrawable(new ColorDrawable(holoOrange));
-                mFab.setDrawable(getResources().getDrawable(R.drawable.ic_social_add_person));
+                FloatingActionButtonTheme.of(this).edit().setColor(holoOrange).setDrawableResource(R.drawable.ic_social_add_person).apply();
                 break;
             }
             case R.id.redButton: {
                 int holoRed = getResources().getColor(R.color.holo_red_light);
-                mFab.setColor(holoRed);
                 getSupportActionBar().setBackgroundDrawable(new ColorDrawable(holoRed));
-                mFab.setDrawable(getResources().getDrawable(R.drawable.ic_navigation_accept));
+                FloatingActionButtonTheme.of(this).edit().setColor(holoRed).setDrawableResource(R.drawable.ic_navigation_accept).apply();
                 break;
             }
         }
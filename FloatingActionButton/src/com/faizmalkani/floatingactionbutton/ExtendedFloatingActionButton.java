@@ -0,0 +1,299 @@
+package com.faizmalkani.floatingactionbutton;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.animation.AnimationUtils;
+import android.widget.RelativeLayout;
+
+import com.faizmalkani.floatingactionbutton.log.LogManager;
+
+/**
+ * A {@link FloatingActionButton} with a text label next to its icon, drawn in a pill shape.
+ * <p>
+ * The label is measured once through the shared {@link LabelLayoutCache}. Expanding and collapsing
+ * only changes the clipped width of the pill and the position of the label, the view keeps its
+ * measured size during the animation. Touches and the accessibility bounds are limited to the
+ * visible pill.
+ * <p>
+ * The icon is on the start side of the pill, the right side in right-to-left layouts.
+ */
+public class ExtendedFloatingActionButton extends FloatingActionButton {
+
+    private final TextPaint mLabelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mPill = new RectF();
+    private final int labelPadding;
+    private CharSequence mText;
+    private int mTextAlpha;
+    private LabelLayoutCache.Label mLabel;
+    private boolean mExpanded;
+    /**
+     * 0 when collapsed to a circle, 1 when the label is fully displayed.
+     */
+    private float mProgress;
+    private float mProgressFrom;
+    private long mAnimationStart = -1;
+    private int mPillLeft;
+    private int mPillWidth;
+    private int mCollapseGravity;
+    private boolean mCollapseToRight;
+    private boolean mLayoutRtl;
+
+    public ExtendedFloatingActionButton(Context context) {
+        this(context, null);
+    }
+
+    public ExtendedFloatingActionButton(Context context, AttributeSet attributeSet) {
+        this(context, attributeSet, 0);
+    }
+
+    public ExtendedFloatingActionButton(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        final Resources res = getResources();
+        labelPadding = res.getDimensionPixelSize(R.dimen.fab_default_label_padding);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ExtendedFloatingActionButton, defStyleAttr, 0);
+        mText = a.getText(R.styleable.ExtendedFloatingActionButton_android_text);
+        mLabelPaint.setColor(a.getColor(R.styleable.ExtendedFloatingActionButton_android_textColor, Color.WHITE));
+        mLabelPaint.setTextSize(a.getDimension(R.styleable.ExtendedFloatingActionButton_android_textSize, res.getDimension(R.dimen.fab_default_label_text_size)));
+        mExpanded = a.getBoolean(R.styleable.ExtendedFloatingActionButton_fab_expanded, true);
+        mCollapseGravity = a.getInt(R.styleable.ExtendedFloatingActionButton_fab_collapseGravity, Gravity.NO_GRAVITY);
+        a.recycle();
+
+        mLabelPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        mTextAlpha = mLabelPaint.getAlpha();
+        mProgress = mExpanded ? 1.0f : 0.0f;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && !isInEditMode()) {
+            // the shadow comes from the outline, the software layer would be redrawn on every expand/collapse frame
+            setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    public void setText(CharSequence text) {
+        if (!TextUtils.equals(mText, text)) {
+            mText = text;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public void setTextColor(int color) {
+        mLabelPaint.setColor(color);
+        mTextAlpha = mLabelPaint.getAlpha();
+        invalidate();
+    }
+
+    public void setTypeface(Typeface typeface) {
+        if (mLabelPaint.getTypeface() != typeface) {
+            mLabelPaint.setTypeface(typeface);
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    /**
+     * Show or hide the label.
+     * @param animate animate the change with the show/hide duration and interpolator
+     */
+    public void setExpanded(boolean expanded, boolean animate) {
+        if (mExpanded != expanded) {
+            mExpanded = expanded;
+            if (animate && getWidth() != 0) {
+                mProgressFrom = mProgress;
+                mAnimationStart = AnimationUtils.currentAnimationTimeMillis();
+            } else {
+                mProgress = expanded ? 1.0f : 0.0f;
+                mAnimationStart = -1;
+                updatePill();
+            }
+            if (DEBUG) LogManager.getLogger().d((expanded ? "expand" : "collapse") + " from " + mProgress + " animate=" + animate);
+            invalidate();
+        }
+    }
+
+    /**
+     * Set the side the pill collapses to.
+     * @param gravity {@link Gravity#LEFT}, {@link Gravity#RIGHT}, {@link Gravity#START}, {@link Gravity#END}
+     * or {@link Gravity#NO_GRAVITY} to use the side the button is aligned to in its parent
+     */
+    public void setCollapseGravity(int gravity) {
+        if (mCollapseGravity != gravity) {
+            mCollapseGravity = gravity;
+            resolveCollapseSide();
+            updatePill();
+            invalidate();
+        }
+    }
+
+    public int getCollapseGravity() {
+        return mCollapseGravity;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        resolveCollapseSide();
+        updatePill();
+    }
+
+    @SuppressLint({"InlinedApi", "NewApi"})
+    private void resolveCollapseSide() {
+        int gravity = mCollapseGravity;
+        if (Gravity.NO_GRAVITY == gravity) {
+            gravity = getLayoutGravity();
+        }
+        if (Gravity.NO_GRAVITY == (gravity & Gravity.RELATIVE_HORIZONTAL_GRAVITY_MASK)) {
+            ViewGroup.LayoutParams layoutParams = getLayoutParams();
+            if (layoutParams instanceof RelativeLayout.LayoutParams) {
+                int[] rules = ((RelativeLayout.LayoutParams) layoutParams).getRules();
+                if (0 != rules[RelativeLayout.ALIGN_PARENT_RIGHT]) {
+                    gravity = Gravity.RIGHT;
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && 0 != rules[RelativeLayout.ALIGN_PARENT_END]) {
+                    gravity = Gravity.END;
+                }
+            }
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mLayoutRtl = getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+            gravity = Gravity.getAbsoluteGravity(gravity, getLayoutDirection());
+        }
+        mCollapseToRight = (gravity & Gravity.HORIZONTAL_GRAVITY_MASK) == Gravity.RIGHT;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        final int height = getMeasuredHeight();
+        final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        final int maxWidth = widthMode == MeasureSpec.UNSPECIFIED ? Integer.MAX_VALUE : MeasureSpec.getSize(widthMeasureSpec);
+        mLabel = LabelLayoutCache.get(mText, mLabelPaint.getTypeface(), mLabelPaint.getTextSize(), maxWidth - height - labelPadding);
+
+        if (widthMode != MeasureSpec.EXACTLY) {
+            int width = height;
+            if (null != mLabel) {
+                width += (int) Math.ceil(mLabel.width) + labelPadding;
+            }
+            setMeasuredDimension(Math.min(width, maxWidth), height);
+        }
+    }
+
+    /**
+     * Advance the expand/collapse animation, the button is redrawn on every frame until it ends.
+     * <p>
+     * On Lollipop and above the button has no layer and only its display list is rebuilt. Below,
+     * the software layer needed by the shadow is rasterized again on each frame, for the duration
+     * of the show/hide animation only.
+     */
+    private void updateProgress() {
+        if (mAnimationStart < 0) {
+            return;
+        }
+
+        final float target = mExpanded ? 1.0f : 0.0f;
+        final float elapsed = (float) (AnimationUtils.currentAnimationTimeMillis() - mAnimationStart) / getShowHideDuration();
+        if (elapsed >= 1.0f) {
+            mProgress = target;
+            mAnimationStart = -1;
+        } else {
+            mProgress = mProgressFrom + (target - mProgressFrom) * getShowInterpolator().getInterpolation(elapsed);
+            invalidate();
+        }
+    }
+
+    private void updatePill() {
+        final int collapsedWidth = Math.min(getHeight(), getWidth());
+        final int width = collapsedWidth + Math.round((getWidth() - collapsedWidth) * mProgress);
+        final int left = mCollapseToRight ? getWidth() - width : 0;
+        if (left != mPillLeft || width != mPillWidth) {
+            mPillLeft = left;
+            mPillWidth = width;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                invalidateOutline();
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    void getButtonOutline(Outline outline) {
+        outline.setRoundRect(mPillLeft, 0, mPillLeft + mPillWidth, getHeight(), getHeight() / 2.0f);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        updateProgress();
+        updatePill();
+
+        final float shadowRadius = getShadowRadius();
+        final int height = getHeight();
+        final float radius = height / 2.0f - shadowRadius;
+        mPill.set(mPillLeft + shadowRadius, shadowRadius, mPillLeft + mPillWidth - shadowRadius, height - shadowRadius);
+        canvas.drawRoundRect(mPill, radius, radius, getButtonPaint());
+        final int iconLeft = mLayoutRtl ? mPillLeft + mPillWidth - height : mPillLeft;
+        drawIcon(canvas, iconLeft, 0, height, height);
+
+        if (null != mLabel && mPillWidth > height) {
+            final int saveCount = canvas.save();
+            canvas.clipRect(mPill);
+            mLabelPaint.setAlpha(Math.round(mTextAlpha * mProgress));
+            final float labelLeft = mLayoutRtl ? iconLeft - mLabel.width : iconLeft + height;
+            canvas.drawText(mLabel.text, labelLeft, (height - mLabel.ascent - mLabel.descent) / 2.0f, mLabelPaint);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(@NonNull MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN
+                && (event.getX() < mPillLeft || event.getX() >= mPillLeft + mPillWidth)) {
+            // outside of the collapsed pill, let the views below handle it
+            return false;
+        }
+        return super.dispatchTouchEvent(event);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    public void onInitializeAccessibilityNodeInfo(@NonNull AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        final Rect bounds = new Rect(mPillLeft, 0, mPillLeft + mPillWidth, getHeight());
+        bounds.offset(getLeft(), getTop());
+        info.setBoundsInParent(bounds);
+        final int[] location = new int[2];
+        getLocationOnScreen(location);
+        bounds.set(mPillLeft, 0, mPillLeft + mPillWidth, getHeight());
+        bounds.offset(location[0], location[1]);
+        info.setBoundsInScreen(bounds);
+    }
+}
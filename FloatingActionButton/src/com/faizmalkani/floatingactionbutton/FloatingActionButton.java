@@ -1,6 +1,7 @@
 package com.faizmalkani.floatingactionbutton;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
@@ -15,8 +16,11 @@ import android.graphics.Point;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.view.Display;
 import android.view.Gravity;
 import android.view.MotionEvent;
@@ -29,10 +33,13 @@ import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 import android.view.animation.TranslateAnimation;
 import android.widget.AbsListView;
+import android.widget.ImageView;
 import android.widget.RelativeLayout;
 
 import com.faizmalkani.floatingactionbutton.log.LogManager;
 
+import java.util.List;
+
 public class FloatingActionButton extends View {
 
     public static final boolean DEBUG = false;
@@ -46,16 +53,37 @@ public class FloatingActionButton extends View {
     private final Interpolator showInterpolator;
     private final Paint mButtonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint mDrawablePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private final float shadowRadius, dx, dy;
+    private float shadowRadius, dx, dy;
     private final int shadowColor;
-    private final float elevation;
+    private float elevation;
     private final float pressedElevation;
     private final int duration;
     private final int gravity;
     private final int padding;
     private int margin;
     private Bitmap mBitmap;
+    /**
+     * The resource the icon was loaded from, 0 if it can't be reloaded after a memory trim.
+     */
+    private int mDrawableRes;
+    private boolean mLayerReleased;
+    /**
+     * Whether the software layer was rendered since the button was attached.
+     */
+    private boolean mLayerDrawn;
+    /**
+     * Rendering of the button before an animated color/icon change, faded out in the parent overlay.
+     */
+    private ImageView mSnapshotView;
+    private ViewGroup mSnapshotParent;
+    private final Runnable mEndTransition = new Runnable() {
+        @Override
+        public void run() {
+            endTransition();
+        }
+    };
     private int mColor;
+    private int mPressedColor;
     private Configuration configuration;
     private boolean mHidden = false;
     /**
@@ -64,6 +92,19 @@ public class FloatingActionButton extends View {
     private float mYDisplayed = -1;
     private Float mInset = null;
     private Integer mTop;
+    private FloatingActionMenu mMenu;
+    /**
+     * The {@link FloatingActionButtonTheme} this button belongs to, null if it was unregistered.
+     */
+    private FloatingActionButtonTheme mTheme;
+    /**
+     * Whether a theme was set, the button then doesn't join the theme of its window when attached.
+     */
+    private boolean mThemeSet;
+    /**
+     * The state restored after a recreation, its geometry is reused on the first layout if it still matches.
+     */
+    private SavedState mRestoredState;
 
     public FloatingActionButton(Context context) {
         this(context, null);
@@ -102,37 +143,33 @@ public class FloatingActionButton extends View {
 
         a = getContext().obtainStyledAttributes(attrs, R.styleable.FloatingActionButton, defStyleAttr ,0);
         mColor = a.getColor(R.styleable.FloatingActionButton_android_color, Color.WHITE);
+        mPressedColor = darkenColor(mColor);
         mButtonPaint.setStyle(Paint.Style.FILL);
         mButtonPaint.setColor(mColor);
-        elevation = a.getDimension(R.styleable.FloatingActionButton_fab_elevation, defaultElevation);
+        final float elevation = a.getDimension(R.styleable.FloatingActionButton_fab_elevation, defaultElevation);
         pressedElevation = a.getDimension(R.styleable.FloatingActionButton_fab_elevationPressed, defaultElevationPressed);
         duration = a.getInteger(R.styleable.FloatingActionButton_fab_duration, defaultDuration);
 
         shadowColor = a.getInteger(R.styleable.FloatingActionButton_android_shadowColor, Color.argb(110, 0, 0, 0));
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || isInEditMode()) {
             hideInterpolator = showInterpolator = new AccelerateDecelerateInterpolator();
-            shadowRadius = elevation;
-            dx = elevation * 0.15f;
-            dy = elevation * 0.3f;
-            mButtonPaint.setShadowLayer(SHADOW_COEF_NORMAL * elevation, dx, dy, shadowColor);
         } else {
             //showInterpolator = hideInterpolator = AnimationUtils.loadInterpolator(context, android.R.interpolator.fast_out_linear_in);
             hideInterpolator = showInterpolator = AnimationUtils.loadInterpolator(context, android.R.interpolator.linear_out_slow_in);
-            shadowRadius = 0;
-            dx = dy = 0.0f;
-            setElevation(elevation);
             setOutlineProvider(new ViewOutlineProvider() {
                 @Override
                 public void getOutline(View view, Outline outline) {
-                    outline.setOval(0, 0, view.getWidth(), view.getHeight());
+                    getButtonOutline(outline);
                 }
             });
             setClipToOutline(true);
         }
+        updateElevation(elevation);
 
         Drawable drawable = a.getDrawable(R.styleable.FloatingActionButton_android_drawable);
         if (null != drawable) {
             mBitmap = ((BitmapDrawable) drawable).getBitmap();
+            mDrawableRes = a.getResourceId(R.styleable.FloatingActionButton_android_drawable, 0);
         }
         setWillNotDraw(false);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
@@ -140,6 +177,9 @@ public class FloatingActionButton extends View {
 
         a.recycle();
 
+        if (!isInEditMode())
+            MemoryTrimmer.register(this);
+
         if (DEBUG) LogManager.getLogger().d("init to "+(mHidden?"hidden":"shown"));
     }
 
@@ -161,6 +201,143 @@ public class FloatingActionButton extends View {
         super.onAttachedToWindow();
         mYDisplayed = -1;
         mInset = null;
+        if (!isInEditMode() && !mThemeSet)
+            FloatingActionButtonTheme.of(getContext()).register(this);
+        restoreLayer();
+        restoreIcon();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        ss.hidden = mHidden;
+        ss.yDisplayed = mYDisplayed;
+        ss.inset = null == mInset ? Float.NaN : mInset;
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        ss.screenWidth = metrics.widthPixels;
+        ss.screenHeight = metrics.heightPixels;
+        ss.height = getHeight();
+        ss.margin = margin;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        mHidden = ss.hidden;
+        mRestoredState = ss;
+        if (DEBUG) LogManager.getLogger().d("restored to "+(mHidden?"hidden":"shown")+" mYDisplayed="+ss.yDisplayed+" mInset="+ss.inset);
+    }
+
+    /**
+     * Reuse the geometry computed before the recreation if the screen and the button did not change.
+     */
+    private void applyRestoredGeometry() {
+        SavedState ss = mRestoredState;
+        mRestoredState = null;
+        if (-1 == ss.yDisplayed || ss.height != getHeight() || ss.margin != margin) {
+            return;
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        if (ss.screenWidth == metrics.widthPixels && ss.screenHeight == metrics.heightPixels) {
+            mYDisplayed = ss.yDisplayed;
+            mInset = Float.isNaN(ss.inset) ? null : ss.inset;
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (visibility == VISIBLE) {
+            restoreLayer();
+            restoreIcon();
+        }
+    }
+
+    private boolean isAttached() {
+        return null != getWindowToken();
+    }
+
+    /**
+     * @return true once the hide animation is over, the button is then out of the screen
+     */
+    private boolean isFullyHidden() {
+        return mHidden && (null == getAnimation() || getAnimation().hasEnded());
+    }
+
+    private boolean isDisplayed() {
+        return isAttached() && getVisibility() == VISIBLE && !isFullyHidden();
+    }
+
+    /**
+     * Release the software layer of an attached button that is not displayed.
+     * <p>
+     * Detached buttons are skipped, the framework already destroyed their layer.
+     * @return the size of the released layer, 0 if there was no rendered layer
+     */
+    int trimLayer() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !isAttached() || isDisplayed()
+                || mLayerReleased || getLayerType() != View.LAYER_TYPE_SOFTWARE) {
+            return 0;
+        }
+
+        int released = mLayerDrawn ? getWidth() * getHeight() * 4 : 0;
+        setLayerType(View.LAYER_TYPE_NONE, null);
+        mLayerReleased = true;
+        mLayerDrawn = false;
+        if (DEBUG) LogManager.getLogger().d("trimLayer released "+released);
+        return released;
+    }
+
+    /**
+     * Drop the reference to the icon of a button that is not displayed, if it can be reloaded.
+     * @param complete also release the icon if the button is still attached to a window
+     * @param released the released bitmaps, they are only freed once nothing else holds them
+     */
+    void trimIcons(boolean complete, List<Bitmap> released) {
+        if (isDisplayed() || !(complete || !isAttached()) || 0 == mDrawableRes || null == mBitmap) {
+            return;
+        }
+
+        if (!released.contains(mBitmap)) {
+            released.add(mBitmap);
+        }
+        mBitmap = null;
+    }
+
+    boolean holdsBitmap(Bitmap bitmap) {
+        return bitmap == mBitmap;
+    }
+
+    private void restoreLayer() {
+        if (mLayerReleased) {
+            mLayerReleased = false;
+            setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+        }
+    }
+
+    private void restoreIcon() {
+        if (null == mBitmap && 0 != mDrawableRes) {
+            mBitmap = ((BitmapDrawable) getResources().getDrawable(mDrawableRes)).getBitmap();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (isFullyHidden()) {
+            // out of the screen, don't rebuild a released layer or icon, hide(false) restores them
+            return;
+        }
+        if (!mLayerReleased) {
+            mLayerDrawn = true;
+        }
+        super.draw(canvas);
     }
 
     @SuppressLint("InlinedApi")
@@ -208,6 +385,8 @@ public class FloatingActionButton extends View {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         configuration = null;
+        mLayerDrawn = false;
+        endTransition();
     }
 
     public static int darkenColor(int color) {
@@ -218,23 +397,180 @@ public class FloatingActionButton extends View {
     }
 
     public void setColor(int color) {
-        mColor = color;
-        mButtonPaint.setColor(mColor);
+        setColor(color, false);
+    }
+
+    /**
+     * @param animate fade from the current rendering of the button, on Jelly Bean MR2 and above
+     */
+    public void setColor(int color, boolean animate) {
+        if (animate) {
+            startTransition();
+        }
+        updateColor(color, darkenColor(color));
         invalidate();
     }
 
     public void setDrawable(Drawable drawable) {
-        mBitmap = ((BitmapDrawable) drawable).getBitmap();
+        setDrawable(drawable, false);
+    }
+
+    /**
+     * @param animate fade from the current rendering of the button, on Jelly Bean MR2 and above
+     */
+    public void setDrawable(Drawable drawable, boolean animate) {
+        if (animate) {
+            startTransition();
+        }
+        updateBitmap(((BitmapDrawable) drawable).getBitmap(), 0);
+        invalidate();
+    }
+
+    /**
+     * Set the icon from a resource, it can be released and reloaded when memory is low.
+     */
+    public void setDrawableResource(int resId) {
+        setDrawableResource(resId, false);
+    }
+
+    /**
+     * Set the icon from a resource, it can be released and reloaded when memory is low.
+     * @param animate fade from the current rendering of the button, on Jelly Bean MR2 and above
+     */
+    public void setDrawableResource(int resId, boolean animate) {
+        if (animate) {
+            startTransition();
+        }
+        updateBitmap(((BitmapDrawable) getResources().getDrawable(resId)).getBitmap(), resId);
         invalidate();
     }
 
+    /**
+     * Render the button as it is now into a snapshot placed over it in the parent overlay, and fade
+     * the snapshot out with its alpha property on a hardware layer. The button itself is only
+     * redrawn once with its new color and icon.
+     * <p>
+     * If a transition is already running, the snapshot keeps showing the state it started from.
+     * The snapshot is released when the fade ends, or when the button is hidden or moved.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void startTransition() {
+        if (null != mSnapshotParent) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 || isInEditMode() || !isDisplayed()
+                || 0 == getWidth() || 0 == getHeight() || !(getParent() instanceof ViewGroup)
+                || (null != getAnimation() && !getAnimation().hasEnded())) {
+            // no overlay to fade in, switch instantly
+            return;
+        }
+
+        final Bitmap snapshot = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        draw(new Canvas(snapshot));
+
+        if (null == mSnapshotView) {
+            mSnapshotView = new ImageView(getContext());
+        }
+        mSnapshotView.setImageBitmap(snapshot);
+        mSnapshotView.setAlpha(1.0f);
+        mSnapshotView.layout(getLeft(), getTop(), getRight(), getBottom());
+        mSnapshotView.setTranslationX(getTranslationX());
+        mSnapshotView.setTranslationY(getTranslationY());
+
+        mSnapshotParent = (ViewGroup) getParent();
+        mSnapshotParent.getOverlay().add(mSnapshotView);
+        mSnapshotView.animate()
+                .alpha(0.0f)
+                .setDuration(duration)
+                .setInterpolator(showInterpolator)
+                .withLayer()
+                .withEndAction(mEndTransition);
+        if (DEBUG) LogManager.getLogger().d("start transition from color "+Integer.toHexString(mColor));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void endTransition() {
+        if (null != mSnapshotParent) {
+            mSnapshotView.animate().cancel();
+            mSnapshotParent.getOverlay().remove(mSnapshotView);
+            // drop the only reference to the snapshot bitmap
+            mSnapshotView.setImageDrawable(null);
+            mSnapshotParent = null;
+        }
+    }
+
+    /**
+     * Change the colors without invalidating the view, used by {@link FloatingActionButtonTheme} to batch changes.
+     */
+    void updateColor(int color, int pressedColor) {
+        mColor = color;
+        mPressedColor = pressedColor;
+        mButtonPaint.setColor(mColor);
+    }
+
+    /**
+     * Change the icon without invalidating the view.
+     * @param drawableRes the resource the bitmap was loaded from, 0 if unknown
+     */
+    void updateBitmap(Bitmap bitmap, int drawableRes) {
+        mBitmap = bitmap;
+        mDrawableRes = drawableRes;
+    }
+
+    /**
+     * Change the resting elevation without invalidating the view.
+     */
+    void updateElevation(float elevation) {
+        this.elevation = elevation;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || isInEditMode()) {
+            shadowRadius = elevation;
+            dx = elevation * 0.15f;
+            dy = elevation * 0.3f;
+            mButtonPaint.setShadowLayer(SHADOW_COEF_NORMAL * elevation, dx, dy, shadowColor);
+        } else {
+            shadowRadius = 0;
+            dx = dy = 0.0f;
+            setElevation(elevation);
+        }
+    }
+
+    /**
+     * Outline used for the elevation shadow and the clipping on Lollipop and above.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    void getButtonOutline(Outline outline) {
+        outline.setOval(0, 0, getWidth(), getHeight());
+    }
+
+    Paint getButtonPaint() {
+        return mButtonPaint;
+    }
+
+    float getShadowRadius() {
+        return shadowRadius;
+    }
+
+    int getLayoutGravity() {
+        return gravity;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         float radius = (float) (getWidth() / 2) - shadowRadius /*- Math.max(dx, dy)*/;
         canvas.drawCircle(getWidth() / 2, getHeight() / 2, radius, mButtonPaint);
+        drawIcon(canvas, 0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Draw the icon centered in the given area.
+     */
+    void drawIcon(Canvas canvas, int left, int top, int width, int height) {
+        if (null == mBitmap && !mHidden) {
+            restoreIcon();
+        }
         if (null != mBitmap) {
-            canvas.drawBitmap(mBitmap, (getWidth() - mBitmap.getWidth()) / 2,
-                    (getHeight() - mBitmap.getHeight()) / 2, mDrawablePaint);
+            canvas.drawBitmap(mBitmap, left + (width - mBitmap.getWidth()) / 2,
+                    top + (height - mBitmap.getHeight()) / 2, mDrawablePaint);
         }
     }
 
@@ -244,6 +580,14 @@ public class FloatingActionButton extends View {
         super.onLayout(changed, left, top, right, bottom);
 
         // Store the FAB button's displayed Y position if we are not already aware of it
+        if (null != mSnapshotParent && (mSnapshotView.getLeft() != getLeft() || mSnapshotView.getTop() != getTop()
+                || mSnapshotView.getWidth() != getWidth() || mSnapshotView.getHeight() != getHeight())) {
+            // the snapshot would fade at the old position
+            endTransition();
+        }
+        if (mYDisplayed == -1 && null != mRestoredState) {
+            applyRestoredGeometry();
+        }
         if (mYDisplayed == -1) {
             updateShownPosition();
         }
@@ -286,7 +630,7 @@ public class FloatingActionButton extends View {
         if (event.getAction() == MotionEvent.ACTION_UP) {
             color = mColor;
         } else {
-            color = darkenColor(mColor);
+            color = mPressedColor;
         }
         mButtonPaint.setColor(color);
 
@@ -314,6 +658,22 @@ public class FloatingActionButton extends View {
 
             // Store the new hidden state
             mHidden = hide;
+            endTransition();
+            if (hide && null != mMenu) {
+                mMenu.setExpanded(false, true);
+            }
+            if (!hide) {
+                restoreLayer();
+                restoreIcon();
+            }
+
+            if (null == mTop) {
+                // not laid out yet, onLayout() will place the FAB without animating
+                if (!hide) {
+                    clearAnimation();
+                }
+                return true;
+            }
 
             if (DEBUG) LogManager.getLogger().d("scroll to " + (mHidden ? "hide" : "show") + " = " + (mHidden ? getHiddenPos() : (mYDisplayed - (mInset == null ? 0 : mInset)))+ " top="+getTop());
 
@@ -345,6 +705,33 @@ public class FloatingActionButton extends View {
         return false;
     }
 
+    /**
+     * Set by {@link FloatingActionMenu#attachTo(FloatingActionButton)}.
+     */
+    void setMenu(FloatingActionMenu menu) {
+        mMenu = menu;
+    }
+
+    /**
+     * Set by {@link FloatingActionButtonTheme#register(FloatingActionButton)} and {@link FloatingActionButtonTheme#unregister(FloatingActionButton)}.
+     */
+    void setButtonTheme(FloatingActionButtonTheme theme) {
+        mTheme = theme;
+        mThemeSet = true;
+    }
+
+    FloatingActionButtonTheme getButtonTheme() {
+        return mTheme;
+    }
+
+    @Override
+    public boolean performClick() {
+        if (null != mMenu) {
+            mMenu.toggle();
+        }
+        return super.performClick();
+    }
+
     public void listenTo(AbsListView listView) {
         if (null != listView) {
             listView.setOnScrollListener(new DirectionScrollListener(this, !listView.isStackFromBottom()));
@@ -404,5 +791,59 @@ public class FloatingActionButton extends View {
 
     public void setHidden(boolean value) {
         mHidden = value;
+        endTransition();
+        if (!value) {
+            restoreLayer();
+            restoreIcon();
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        boolean hidden;
+        float yDisplayed;
+        float inset;
+        int screenWidth;
+        int screenHeight;
+        int height;
+        int margin;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            hidden = 0 != in.readInt();
+            yDisplayed = in.readFloat();
+            inset = in.readFloat();
+            screenWidth = in.readInt();
+            screenHeight = in.readInt();
+            height = in.readInt();
+            margin = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(@NonNull Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(hidden ? 1 : 0);
+            out.writeFloat(yDisplayed);
+            out.writeFloat(inset);
+            out.writeInt(screenWidth);
+            out.writeInt(screenHeight);
+            out.writeInt(height);
+            out.writeInt(margin);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.faizmalkani.floatingactionbutton;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.faizmalkani.floatingactionbutton.log.LogManager;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Applies the same color, icon and elevation to a group of {@link FloatingActionButton}s and
+ * {@link FloatingActionMenu}s at once.
+ * <p>
+ * A button or menu belongs to one theme at a time. When attached to a window it joins the theme
+ * of its activity, see {@link #of(Context)}, unless it was registered in another theme or
+ * unregistered before. Buttons registered after a change, from a fragment or a list row, get
+ * the values applied so far.
+ * <p>
+ * The values applied are kept by the theme of the activity instance, they are not saved: a
+ * recreated activity starts with the values of the layout, apply them again in
+ * {@link Activity#onCreate(android.os.Bundle)}.
+ * <p>
+ * The pressed color and the icon bitmap are computed once for all the buttons, and each button
+ * is invalidated once per {@link Editor#apply()} whatever the number of changed properties.
+ * <pre>
+ * FloatingActionButtonTheme.of(activity).edit().setColor(color).setDrawableResource(R.drawable.ic_content_new).apply();
+ * </pre>
+ */
+public class FloatingActionButtonTheme {
+
+    private static final Map<Context, FloatingActionButtonTheme> windowThemes = new WeakHashMap<Context, FloatingActionButtonTheme>();
+
+    private final Map<FloatingActionButton, Boolean> buttons = new WeakHashMap<FloatingActionButton, Boolean>();
+    private final Map<FloatingActionMenu, Boolean> menus = new WeakHashMap<FloatingActionMenu, Boolean>();
+    private final Editor editor = new Editor();
+    /**
+     * The values applied so far, given to the buttons registered later.
+     */
+    private final Editor current = new Editor();
+
+    /**
+     * Create a theme for a group of buttons and menus registered explicitly, see {@link #registerAll(View)}.
+     */
+    public FloatingActionButtonTheme() {}
+
+    /**
+     * @return the theme shared by all the buttons and menus of the activity of the given context
+     */
+    public static FloatingActionButtonTheme of(Context context) {
+        final Context window = getWindowContext(context);
+        FloatingActionButtonTheme theme = windowThemes.get(window);
+        if (null == theme) {
+            theme = new FloatingActionButtonTheme();
+            windowThemes.put(window, theme);
+        }
+        return theme;
+    }
+
+    private static Context getWindowContext(Context context) {
+        Context base = context;
+        while (!(base instanceof Activity) && base instanceof ContextWrapper && null != ((ContextWrapper) base).getBaseContext()) {
+            base = ((ContextWrapper) base).getBaseContext();
+        }
+        return base instanceof Activity ? base : context;
+    }
+
+    /**
+     * Add the button to this theme and remove it from its previous one, it gets the values applied so far.
+     */
+    public void register(FloatingActionButton button) {
+        final FloatingActionButtonTheme previous = button.getButtonTheme();
+        if (previous != this) {
+            if (null != previous) {
+                previous.buttons.remove(button);
+            }
+            buttons.put(button, Boolean.TRUE);
+            button.setButtonTheme(this);
+            current.applyTo(button, null);
+            button.invalidate();
+        }
+    }
+
+    /**
+     * Remove the button from this theme, it keeps its current values and no longer joins the theme
+     * of its window when attached.
+     */
+    public void unregister(FloatingActionButton button) {
+        if (null != buttons.remove(button)) {
+            button.setButtonTheme(null);
+        }
+    }
+
+    /**
+     * Add the menu to this theme and remove it from its previous one, it gets the values applied so far.
+     */
+    public void register(FloatingActionMenu menu) {
+        final FloatingActionButtonTheme previous = menu.getButtonTheme();
+        if (previous != this) {
+            if (null != previous) {
+                previous.menus.remove(menu);
+            }
+            menus.put(menu, Boolean.TRUE);
+            menu.setButtonTheme(this);
+            current.applyTo(menu);
+            menu.invalidate();
+        }
+    }
+
+    /**
+     * Remove the menu from this theme, it keeps its current values and no longer joins the theme
+     * of its window when attached.
+     */
+    public void unregister(FloatingActionMenu menu) {
+        if (null != menus.remove(menu)) {
+            menu.setButtonTheme(null);
+        }
+    }
+
+    /**
+     * Register all the {@link FloatingActionButton}s and {@link FloatingActionMenu}s found in the
+     * hierarchy of the given view, to style a group of buttons apart from the rest of their window.
+     * They leave the theme they belonged to, use a theme created with {@link #FloatingActionButtonTheme()}
+     * for such a group.
+     */
+    public void registerAll(View root) {
+        if (root instanceof FloatingActionButton) {
+            register((FloatingActionButton) root);
+        } else if (root instanceof FloatingActionMenu) {
+            register((FloatingActionMenu) root);
+        } else if (root instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) root;
+            for (int i = 0, count = group.getChildCount(); i < count; ++i) {
+                registerAll(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Start a new set of changes, the previous one is discarded if it was not applied.
+     */
+    public Editor edit() {
+        editor.clear();
+        return editor;
+    }
+
+    public final class Editor {
+        private boolean hasColor;
+        private int color;
+        private int pressedColor;
+        private boolean hasDrawable;
+        private int drawableRes;
+        private boolean hasElevation;
+        private float elevation;
+
+        private Editor() {}
+
+        private void clear() {
+            hasColor = hasDrawable = hasElevation = false;
+        }
+
+        public Editor setColor(int color) {
+            this.color = color;
+            hasColor = true;
+            return this;
+        }
+
+        public Editor setDrawableResource(int resId) {
+            this.drawableRes = resId;
+            hasDrawable = true;
+            return this;
+        }
+
+        public Editor setElevation(float elevation) {
+            this.elevation = elevation;
+            hasElevation = true;
+            return this;
+        }
+
+        /**
+         * Apply the values to a button without invalidating it.
+         * @param bitmap the icon loaded from the drawable resource, null to load it from the button resources
+         * @return the icon used
+         */
+        private Bitmap applyTo(FloatingActionButton button, Bitmap bitmap) {
+            if (hasColor) {
+                button.updateColor(color, pressedColor);
+            }
+            if (hasDrawable) {
+                if (null == bitmap) {
+                    bitmap = ((BitmapDrawable) button.getResources().getDrawable(drawableRes)).getBitmap();
+                }
+                button.updateBitmap(bitmap, drawableRes);
+            }
+            if (hasElevation) {
+                button.updateElevation(elevation);
+            }
+            return bitmap;
+        }
+
+        private void applyTo(FloatingActionMenu menu) {
+            if (hasColor) {
+                menu.updateColor(color, pressedColor);
+            }
+        }
+
+        /**
+         * Apply the changes to all the registered buttons and menus.
+         */
+        public void apply() {
+            if (!(hasColor || hasDrawable || hasElevation)) {
+                return;
+            }
+
+            if (hasColor) {
+                pressedColor = FloatingActionButton.darkenColor(color);
+                current.color = color;
+                current.pressedColor = pressedColor;
+                current.hasColor = true;
+            }
+            if (hasDrawable) {
+                current.drawableRes = drawableRes;
+                current.hasDrawable = true;
+            }
+            if (hasElevation) {
+                current.elevation = elevation;
+                current.hasElevation = true;
+            }
+
+            Bitmap bitmap = null;
+            for (FloatingActionButton button : buttons.keySet()) {
+                bitmap = applyTo(button, bitmap);
+                button.invalidate();
+            }
+            for (FloatingActionMenu menu : menus.keySet()) {
+                applyTo(menu);
+                menu.invalidate();
+            }
+            if (FloatingActionButton.DEBUG) LogManager.getLogger().d("theme applied to "+buttons.size()+" buttons and "+menus.size()+" menus");
+            clear();
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package com.faizmalkani.floatingactionbutton;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.os.Bundle;
+import androidx.annotation.NonNull;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+import android.widget.Button;
+
+import com.faizmalkani.floatingactionbutton.log.LogManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Speed-dial menu of secondary actions, stacked above the {@link FloatingActionButton} it is
+ * {@link #attachTo(FloatingActionButton) attached to}.
+ * <p>
+ * All the actions are drawn by this single view with a shared paint and layer, their icons are only
+ * loaded on the first expand. The staggered open/close sequence is driven by one progress value
+ * for the whole menu. The actions are exposed to accessibility services as virtual views.
+ */
+public class FloatingActionMenu extends View {
+
+    /**
+     * Part of the sequence each action waits for before the next one starts to move.
+     */
+    private static final float STAGGER = 0.15f;
+
+    public interface OnActionClickListener {
+        void onActionClick(FloatingActionMenu menu, int actionId);
+    }
+
+    private static final class Action {
+        final int id;
+        final int drawableRes;
+        final CharSequence contentDescription;
+        Bitmap bitmap;
+
+        Action(int id, int drawableRes, CharSequence contentDescription) {
+            this.id = id;
+            this.drawableRes = drawableRes;
+            this.contentDescription = contentDescription;
+        }
+    }
+
+    private final List<Action> mActions = new ArrayList<Action>();
+    private final Paint mButtonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mDrawablePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Interpolator interpolator = new AccelerateDecelerateInterpolator();
+    private final Rect mTempRect = new Rect();
+    private final float elevation;
+    private final int shadowColor;
+    private final int duration;
+    private final int actionSize;
+    private final int actionSpacing;
+    private int mColor;
+    private int mPressedColor;
+    private OnActionClickListener mListener;
+    private FloatingActionButton mButton;
+    /**
+     * Whether the button was clickable before the menu made it clickable.
+     */
+    private boolean mButtonWasClickable;
+    /**
+     * The {@link FloatingActionButtonTheme} this menu belongs to, null if it was unregistered.
+     */
+    private FloatingActionButtonTheme mTheme;
+    /**
+     * Whether a theme was set, the menu then doesn't join the theme of its window when attached.
+     */
+    private boolean mThemeSet;
+    private boolean mExpanded;
+    private boolean mActionsLoaded;
+    private boolean mLayerReleased;
+    private boolean mLayerDrawn;
+    /**
+     * 0 when all the actions are collapsed, 1 when they are all displayed.
+     */
+    private float mProgress;
+    private float mProgressFrom;
+    private long mAnimationStart = -1;
+    private int mPressedIndex = -1;
+    private int mHoveredIndex = -1;
+    private int mAccessibilityFocusedIndex = -1;
+    private AccessibilityNodeProvider mNodeProvider;
+
+    private final ViewTreeObserver.OnPreDrawListener mFollowButton = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            followButton();
+            return true;
+        }
+    };
+
+    public FloatingActionMenu(Context context) {
+        this(context, null);
+    }
+
+    public FloatingActionMenu(Context context, AttributeSet attributeSet) {
+        this(context, attributeSet, 0);
+    }
+
+    public FloatingActionMenu(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        final Resources res = getResources();
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.FloatingActionMenu, defStyleAttr, 0);
+        mColor = a.getColor(R.styleable.FloatingActionMenu_android_color, Color.WHITE);
+        shadowColor = a.getInteger(R.styleable.FloatingActionMenu_android_shadowColor, Color.argb(110, 0, 0, 0));
+        elevation = a.getDimension(R.styleable.FloatingActionMenu_fab_elevation, res.getDimension(R.dimen.fab_default_elevationPressed));
+        duration = a.getInteger(R.styleable.FloatingActionMenu_fab_duration, res.getInteger(R.integer.fab_default_duration));
+        actionSize = a.getDimensionPixelSize(R.styleable.FloatingActionMenu_fab_actionSize, res.getDimensionPixelSize(R.dimen.fab_default_action_size));
+        actionSpacing = a.getDimensionPixelSize(R.styleable.FloatingActionMenu_fab_actionSpacing, res.getDimensionPixelSize(R.dimen.fab_default_action_spacing));
+        a.recycle();
+
+        mPressedColor = FloatingActionButton.darkenColor(mColor);
+        mButtonPaint.setStyle(Paint.Style.FILL);
+        mButtonPaint.setColor(mColor);
+        mButtonPaint.setShadowLayer(elevation, elevation * 0.15f, elevation * 0.3f, shadowColor);
+
+        setWillNotDraw(false);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+
+        if (!isInEditMode())
+            MemoryTrimmer.register(this);
+    }
+
+    /**
+     * Anchor the menu above the given button, which must have the same parent as the menu.
+     * <p>
+     * Clicking the button toggles the menu, before its own click listener is called, and hiding
+     * the button collapses the menu. The button is made clickable until the menu is attached to
+     * another button or to null.
+     */
+    public void attachTo(FloatingActionButton button) {
+        if (button == mButton) {
+            return;
+        }
+        if (null != mButton) {
+            mButton.setMenu(null);
+            mButton.setClickable(mButtonWasClickable);
+        }
+        mButton = button;
+        if (null != button) {
+            button.setMenu(this);
+            mButtonWasClickable = button.isClickable();
+            button.setClickable(true);
+        }
+        requestLayout();
+    }
+
+    public FloatingActionButton getButton() {
+        return mButton;
+    }
+
+    /**
+     * Add an action to the menu, the first one added is the closest to the main button.
+     * @param actionId the id reported to the {@link OnActionClickListener}
+     * @param drawableRes the icon of the action, only loaded when the menu is first expanded
+     * @param contentDescription the description of the action for accessibility services
+     */
+    public void addAction(int actionId, int drawableRes, CharSequence contentDescription) {
+        Action action = new Action(actionId, drawableRes, contentDescription);
+        if (mActionsLoaded) {
+            loadAction(action);
+        }
+        mActions.add(action);
+        requestLayout();
+        invalidate();
+    }
+
+    public void setOnActionClickListener(OnActionClickListener listener) {
+        mListener = listener;
+    }
+
+    public void setColor(int color) {
+        updateColor(color, FloatingActionButton.darkenColor(color));
+        invalidate();
+    }
+
+    /**
+     * Change the colors without invalidating the view, used by {@link FloatingActionButtonTheme} to batch changes.
+     */
+    void updateColor(int color, int pressedColor) {
+        mColor = color;
+        mPressedColor = pressedColor;
+    }
+
+    /**
+     * Set by {@link FloatingActionButtonTheme#register(FloatingActionMenu)} and {@link FloatingActionButtonTheme#unregister(FloatingActionMenu)}.
+     */
+    void setButtonTheme(FloatingActionButtonTheme theme) {
+        mTheme = theme;
+        mThemeSet = true;
+    }
+
+    FloatingActionButtonTheme getButtonTheme() {
+        return mTheme;
+    }
+
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    public void toggle() {
+        setExpanded(!mExpanded, true);
+    }
+
+    public void setExpanded(boolean expanded, boolean animate) {
+        if (mExpanded != expanded) {
+            mExpanded = expanded;
+            mPressedIndex = -1;
+            if (expanded) {
+                restoreLayer();
+                loadActions();
+            }
+            if (animate) {
+                mProgressFrom = mProgress;
+                mAnimationStart = AnimationUtils.currentAnimationTimeMillis();
+            } else {
+                mProgress = expanded ? 1.0f : 0.0f;
+                mAnimationStart = -1;
+            }
+            if (FloatingActionButton.DEBUG) LogManager.getLogger().d((expanded ? "expand" : "collapse") + " menu from " + mProgress + " animate=" + animate);
+            invalidate();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+            }
+        }
+    }
+
+    private void loadActions() {
+        if (!mActionsLoaded) {
+            mActionsLoaded = true;
+            for (int i = 0, count = mActions.size(); i < count; ++i) {
+                loadAction(mActions.get(i));
+            }
+        }
+    }
+
+    private void loadAction(Action action) {
+        action.bitmap = ((BitmapDrawable) getResources().getDrawable(action.drawableRes)).getBitmap();
+    }
+
+    private boolean isDisplayed() {
+        return null != getWindowToken() && (mExpanded || 0.0f != mProgress);
+    }
+
+    /**
+     * Release the software layer of an attached menu that is collapsed.
+     * @return the size of the released layer, 0 if there was no rendered layer
+     */
+    int trimLayer() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || null == getWindowToken() || isDisplayed()
+                || mLayerReleased || getLayerType() != View.LAYER_TYPE_SOFTWARE) {
+            return 0;
+        }
+
+        final int released = mLayerDrawn ? getWidth() * getHeight() * 4 : 0;
+        setLayerType(View.LAYER_TYPE_NONE, null);
+        mLayerReleased = true;
+        mLayerDrawn = false;
+        return released;
+    }
+
+    /**
+     * Drop the icons of a collapsed menu, they are loaded again on the next expand.
+     * @param complete also release the icons if the menu is still attached to a window
+     */
+    void trimIcons(boolean complete, List<Bitmap> released) {
+        if (!mActionsLoaded || isDisplayed() || !(complete || null == getWindowToken())) {
+            return;
+        }
+
+        mActionsLoaded = false;
+        for (int i = 0, count = mActions.size(); i < count; ++i) {
+            Action action = mActions.get(i);
+            if (null != action.bitmap && !released.contains(action.bitmap)) {
+                released.add(action.bitmap);
+            }
+            action.bitmap = null;
+        }
+    }
+
+    boolean holdsBitmap(Bitmap bitmap) {
+        for (int i = 0, count = mActions.size(); i < count; ++i) {
+            if (bitmap == mActions.get(i).bitmap) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void restoreLayer() {
+        if (mLayerReleased) {
+            mLayerReleased = false;
+            setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (!isInEditMode() && !mThemeSet)
+            FloatingActionButtonTheme.of(getContext()).register(this);
+        getViewTreeObserver().addOnPreDrawListener(mFollowButton);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnPreDrawListener(mFollowButton);
+        super.onDetachedFromWindow();
+        mLayerDrawn = false;
+    }
+
+    /**
+     * Move the menu above its button, without a new layout pass.
+     */
+    private void followButton() {
+        if (null == mButton || mButton.getParent() != getParent()) {
+            return;
+        }
+
+        final int left = mButton.getLeft() + (mButton.getWidth() - getWidth()) / 2;
+        final int top = mButton.getTop() - getHeight();
+        if (left != getLeft()) {
+            offsetLeftAndRight(left - getLeft());
+        }
+        if (top != getTop()) {
+            offsetTopAndBottom(top - getTop());
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int shadow = (int) Math.ceil(elevation);
+        final int width = actionSize + 2 * shadow;
+        final int height = mActions.size() * (actionSize + actionSpacing) + shadow;
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    private void updateProgress() {
+        if (mAnimationStart < 0) {
+            return;
+        }
+
+        final float target = mExpanded ? 1.0f : 0.0f;
+        final float elapsed = (float) (AnimationUtils.currentAnimationTimeMillis() - mAnimationStart) / duration;
+        if (elapsed >= 1.0f) {
+            mProgress = target;
+            mAnimationStart = -1;
+        } else {
+            mProgress = mProgressFrom + (target - mProgressFrom) * elapsed;
+            invalidate();
+        }
+    }
+
+    /**
+     * @return the progress of a single action in the staggered sequence, between 0 and 1
+     */
+    private float getActionProgress(int index, int count) {
+        final float stagger = count > 1 ? Math.min(STAGGER, 0.5f / (count - 1)) : 0.0f;
+        final float progress = (mProgress - index * stagger) / (1.0f - (count - 1) * stagger);
+        if (progress <= 0.0f) return 0.0f;
+        if (progress >= 1.0f) return 1.0f;
+        return interpolator.getInterpolation(progress);
+    }
+
+    private float getActionCenterY(int index) {
+        return getHeight() - actionSpacing - index * (actionSize + actionSpacing) - actionSize / 2.0f;
+    }
+
+    private void getActionBounds(int index, Rect bounds) {
+        final int left = (getWidth() - actionSize) / 2;
+        final int top = Math.round(getActionCenterY(index) - actionSize / 2.0f);
+        bounds.set(left, top, left + actionSize, top + actionSize);
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!mLayerReleased) {
+            mLayerDrawn = true;
+        }
+        super.draw(canvas);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        updateProgress();
+        if (0.0f == mProgress) {
+            return;
+        }
+
+        final int count = mActions.size();
+        final float centerX = getWidth() / 2.0f;
+        final float radius = actionSize / 2.0f;
+        for (int i = 0; i < count; ++i) {
+            final float progress = getActionProgress(i, count);
+            if (0.0f == progress) {
+                continue;
+            }
+
+            final float centerY = getActionCenterY(i) + (1.0f - progress) * (actionSize + actionSpacing);
+            final int saveCount = canvas.save();
+            canvas.scale(progress, progress, centerX, centerY);
+            mButtonPaint.setColor(i == mPressedIndex ? mPressedColor : mColor);
+            canvas.drawCircle(centerX, centerY, radius, mButtonPaint);
+            final Bitmap bitmap = mActions.get(i).bitmap;
+            if (null != bitmap) {
+                canvas.drawBitmap(bitmap, centerX - bitmap.getWidth() / 2, centerY - bitmap.getHeight() / 2, mDrawablePaint);
+            }
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private int findAction(float x, float y) {
+        if (!mExpanded) {
+            return -1;
+        }
+        final float radius = actionSize / 2.0f;
+        final float dx = x - getWidth() / 2.0f;
+        for (int i = 0, count = mActions.size(); i < count; ++i) {
+            final float dy = y - getActionCenterY(i);
+            if (dx * dx + dy * dy <= radius * radius) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Perform the click on an action, as a touch or an accessibility service would.
+     * @return true if the action exists and the listener was called
+     */
+    public boolean performActionClick(int index) {
+        if (!mExpanded || index < 0 || index >= mActions.size()) {
+            return false;
+        }
+
+        playSoundEffect(SoundEffectConstants.CLICK);
+        sendActionEvent(index, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        if (null != mListener) {
+            mListener.onActionClick(this, mActions.get(index).id);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        if (!mExpanded || 1.0f != mProgress) {
+            return false;
+        }
+
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+                mPressedIndex = findAction(event.getX(), event.getY());
+                invalidate();
+                return -1 != mPressedIndex;
+            case MotionEvent.ACTION_MOVE:
+                if (-1 != mPressedIndex && mPressedIndex != findAction(event.getX(), event.getY())) {
+                    mPressedIndex = -1;
+                    invalidate();
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (-1 != mPressedIndex) {
+                    final int index = mPressedIndex;
+                    mPressedIndex = -1;
+                    invalidate();
+                    performActionClick(index);
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                mPressedIndex = -1;
+                invalidate();
+                return true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean dispatchHoverEvent(@NonNull MotionEvent event) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || !isTouchExplorationEnabled()) {
+            return super.dispatchHoverEvent(event);
+        }
+
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_HOVER_ENTER:
+            case MotionEvent.ACTION_HOVER_MOVE:
+                updateHoveredAction(findAction(event.getX(), event.getY()));
+                return -1 != mHoveredIndex || super.dispatchHoverEvent(event);
+            case MotionEvent.ACTION_HOVER_EXIT:
+                updateHoveredAction(-1);
+                return super.dispatchHoverEvent(event);
+        }
+        return super.dispatchHoverEvent(event);
+    }
+
+    private boolean isTouchExplorationEnabled() {
+        AccessibilityManager manager = (AccessibilityManager) getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+        return manager.isEnabled() && manager.isTouchExplorationEnabled();
+    }
+
+    private void updateHoveredAction(int index) {
+        if (mHoveredIndex != index) {
+            final int previous = mHoveredIndex;
+            mHoveredIndex = index;
+            sendActionEvent(index, AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
+            sendActionEvent(previous, AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+        }
+    }
+
+    /**
+     * Send an accessibility event with an action as its source.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void sendActionEvent(int index, int eventType) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || index < 0 || index >= mActions.size()) {
+            return;
+        }
+        final ViewParent parent = getParent();
+        final AccessibilityManager manager = (AccessibilityManager) getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+        if (null == parent || !manager.isEnabled()) {
+            return;
+        }
+
+        AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+        event.setSource(this, index);
+        event.setPackageName(getContext().getPackageName());
+        event.setClassName(Button.class.getName());
+        event.setEnabled(true);
+        event.setContentDescription(mActions.get(index).contentDescription);
+        parent.requestSendAccessibilityEvent(this, event);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+        if (null == mNodeProvider) {
+            mNodeProvider = new ActionNodeProvider();
+        }
+        return mNodeProvider;
+    }
+
+    /**
+     * Exposes the actions of an expanded menu as virtual views, their ids are their indexes.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class ActionNodeProvider extends AccessibilityNodeProvider {
+
+        @Override
+        public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+            final FloatingActionMenu menu = FloatingActionMenu.this;
+            if (View.NO_ID == virtualViewId) {
+                AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(menu);
+                onInitializeAccessibilityNodeInfo(info);
+                if (mExpanded) {
+                    for (int i = 0, count = mActions.size(); i < count; ++i) {
+                        info.addChild(menu, i);
+                    }
+                }
+                return info;
+            }
+
+            if (!mExpanded || virtualViewId < 0 || virtualViewId >= mActions.size()) {
+                return null;
+            }
+
+            AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+            info.setSource(menu, virtualViewId);
+            info.setParent(menu);
+            info.setPackageName(getContext().getPackageName());
+            info.setClassName(Button.class.getName());
+            info.setContentDescription(mActions.get(virtualViewId).contentDescription);
+            info.setEnabled(true);
+            info.setClickable(true);
+            info.setVisibleToUser(true);
+            info.addAction(AccessibilityNodeInfo.ACTION_CLICK);
+            if (mAccessibilityFocusedIndex == virtualViewId) {
+                info.setAccessibilityFocused(true);
+                info.addAction(AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS);
+            } else {
+                info.addAction(AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS);
+            }
+
+            getActionBounds(virtualViewId, mTempRect);
+            info.setBoundsInParent(mTempRect);
+            final int[] location = new int[2];
+            getLocationOnScreen(location);
+            mTempRect.offset(location[0], location[1]);
+            info.setBoundsInScreen(mTempRect);
+            return info;
+        }
+
+        @Override
+        public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+            if (View.NO_ID == virtualViewId) {
+                return performAccessibilityAction(action, arguments);
+            }
+
+            switch (action) {
+                case AccessibilityNodeInfo.ACTION_CLICK:
+                    return performActionClick(virtualViewId);
+                case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                    if (mAccessibilityFocusedIndex != virtualViewId) {
+                        mAccessibilityFocusedIndex = virtualViewId;
+                        invalidate();
+                        sendActionEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+                        return true;
+                    }
+                    return false;
+                case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                    if (mAccessibilityFocusedIndex == virtualViewId) {
+                        mAccessibilityFocusedIndex = -1;
+                        invalidate();
+                        sendActionEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                        return true;
+                    }
+                    return false;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.faizmalkani.floatingactionbutton;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import com.faizmalkani.floatingactionbutton.log.LogManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the measured labels of the {@link ExtendedFloatingActionButton}s, shared by all the instances.
+ * <p>
+ * A label is measured once for a given text, typeface, text size and available width.
+ */
+final class LabelLayoutCache {
+
+    private static final int MAX_ENTRIES = 32;
+
+    private static final TextPaint measurePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private static final Map<Key, Label> cache = new LinkedHashMap<Key, Label>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Label> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private LabelLayoutCache() {}
+
+    /**
+     * A single line label, ellipsized to fit in the width it was measured for.
+     */
+    static final class Label {
+        final String text;
+        final float width;
+        final float ascent;
+        final float descent;
+
+        private Label(String text, float width, float ascent, float descent) {
+            this.text = text;
+            this.width = width;
+            this.ascent = ascent;
+            this.descent = descent;
+        }
+    }
+
+    static Label get(CharSequence text, Typeface typeface, float textSize, int maxWidth) {
+        if (TextUtils.isEmpty(text) || maxWidth <= 0) {
+            return null;
+        }
+
+        final Key key = new Key(text.toString(), typeface, textSize, maxWidth);
+        Label label = cache.get(key);
+        if (null == label) {
+            measurePaint.setTypeface(typeface);
+            measurePaint.setTextSize(textSize);
+            String ellipsized = TextUtils.ellipsize(text, measurePaint, maxWidth, TextUtils.TruncateAt.END).toString();
+            label = new Label(ellipsized, measurePaint.measureText(ellipsized), measurePaint.ascent(), measurePaint.descent());
+            cache.put(key, label);
+            if (FloatingActionButton.DEBUG) LogManager.getLogger().v("measured label \""+ellipsized+"\" width="+label.width);
+        }
+        return label;
+    }
+
+    static void clear() {
+        cache.clear();
+    }
+
+    private static final class Key {
+        private final String text;
+        private final Typeface typeface;
+        private final float textSize;
+        private final int maxWidth;
+
+        Key(String text, Typeface typeface, float textSize, int maxWidth) {
+            this.text = text;
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.maxWidth = maxWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return maxWidth == other.maxWidth
+                    && textSize == other.textSize
+                    && text.equals(other.text)
+                    && (typeface == null ? other.typeface == null : typeface.equals(other.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + maxWidth;
+            return result;
+        }
+    }
+}
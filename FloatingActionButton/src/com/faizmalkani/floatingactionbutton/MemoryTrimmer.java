@@ -0,0 +1,127 @@
+package com.faizmalkani.floatingactionbutton;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.faizmalkani.floatingactionbutton.log.LogManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Releases the software layers and decoded icons of {@link FloatingActionButton}s and
+ * {@link FloatingActionMenu}s that are detached or hidden when the system asks the application to trim its memory.
+ * <p>
+ * Released resources are rebuilt the next time the button is shown, hidden buttons are not drawn in the meantime.
+ */
+public final class MemoryTrimmer {
+
+    private static final Map<FloatingActionButton, Boolean> buttons = new WeakHashMap<FloatingActionButton, Boolean>();
+    private static final Map<FloatingActionMenu, Boolean> menus = new WeakHashMap<FloatingActionMenu, Boolean>();
+    private static boolean registered;
+    private static int trimCount;
+    private static long reclaimedBytes;
+
+    private MemoryTrimmer() {}
+
+    static void register(FloatingActionButton button) {
+        buttons.put(button, Boolean.TRUE);
+        registerCallbacks(button.getContext());
+    }
+
+    static void register(FloatingActionMenu menu) {
+        menus.put(menu, Boolean.TRUE);
+        registerCallbacks(menu.getContext());
+    }
+
+    private static void registerCallbacks(Context context) {
+        if (!registered && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            registered = true;
+            registerComponentCallbacks(context.getApplicationContext());
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void registerComponentCallbacks(Context context) {
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level >= TRIM_MEMORY_COMPLETE);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(true);
+            }
+        });
+    }
+
+    /**
+     * Release the memory held by the registered buttons that are not currently displayed.
+     * @param complete also release the icons of buttons that are still attached but hidden and the shared label cache
+     * @return an estimate of the number of bytes released by this call: the rendered layers, and the icons
+     * that are no longer held by any registered button, they may still be referenced outside of this library
+     */
+    public static long trimMemory(boolean complete) {
+        long released = 0;
+        final List<Bitmap> icons = new ArrayList<Bitmap>();
+        for (FloatingActionButton button : buttons.keySet()) {
+            released += button.trimLayer();
+            button.trimIcons(complete, icons);
+        }
+        for (FloatingActionMenu menu : menus.keySet()) {
+            released += menu.trimLayer();
+            menu.trimIcons(complete, icons);
+        }
+        for (Bitmap icon : icons) {
+            if (!isHeld(icon)) {
+                released += icon.getRowBytes() * icon.getHeight();
+            }
+        }
+        if (complete) {
+            LabelLayoutCache.clear();
+        }
+        ++trimCount;
+        reclaimedBytes += released;
+        if (FloatingActionButton.DEBUG) LogManager.getLogger().d("trimMemory complete="+complete+" released="+released+" total="+reclaimedBytes);
+        return released;
+    }
+
+    private static boolean isHeld(Bitmap bitmap) {
+        for (FloatingActionButton button : buttons.keySet()) {
+            if (button.holdsBitmap(bitmap)) {
+                return true;
+            }
+        }
+        for (FloatingActionMenu menu : menus.keySet()) {
+            if (menu.holdsBitmap(bitmap)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of times the buttons were asked to trim their memory
+     */
+    public static int getTrimCount() {
+        return trimCount;
+    }
+
+    /**
+     * @return the estimated number of bytes released since the process started, see {@link #trimMemory(boolean)}
+     */
+    public static long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+}